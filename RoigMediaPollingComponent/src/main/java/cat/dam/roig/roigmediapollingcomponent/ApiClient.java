@@ -18,7 +18,6 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
-import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,18 +30,36 @@ import tools.jackson.databind.ObjectMapper;
 public class ApiClient {
 
     private final HttpClient client;
+    private final HttpClientFactory factory;
+    private final HttpResponse.BodyHandler<String> stringHandler;
     private final ObjectMapper mapper = new ObjectMapper();
     private final String baseUrl;
     private final String defaultBlobContainer = "dimedianetblobs";
 
+    // Uses the process-wide shared HttpClient (see HttpClientFactory.shared())
     public ApiClient(String baseUrl) {
+        this(baseUrl, HttpClientFactory.shared());
+    }
+
+    // Uses the HttpClient (and timeouts/gzip settings) of the given factory
+    public ApiClient(String baseUrl, HttpClientFactory factory) {
         this.baseUrl = baseUrl;
-        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.factory = factory != null ? factory : HttpClientFactory.shared();
+        this.client = this.factory.getClient();
+        this.stringHandler = this.factory.stringHandler();
+    }
+
+    // Factory this client was built from (used to detect a changed configuration)
+    HttpClientFactory getFactory() {
+        return factory;
     }
 
     private HttpRequest.Builder requestBuilder(String path, String jwt) {
         HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(baseUrl + path))
-                .timeout(Duration.ofSeconds(30));
+                .timeout(factory.requestTimeoutFor(path));
+        if (factory.isGzip()) {
+            b.header("Accept-Encoding", "gzip");
+        }
         if (jwt != null && !jwt.isBlank()) {
             b.header("Authorization", "Bearer " + jwt);
         }
@@ -56,7 +73,7 @@ public class ApiClient {
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(json))
                 .build();
-        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> resp = client.send(req, stringHandler);
         if (resp.statusCode() / 100 == 2) {
             var node = mapper.readTree(resp.body());
             String token = null;
@@ -79,7 +96,7 @@ public class ApiClient {
 
     public Usuari getMe(String jwt) throws Exception {
         HttpRequest req = requestBuilder("/api/users/me", jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return mapper.readValue(r.body(), Usuari.class);
         }
@@ -88,7 +105,7 @@ public class ApiClient {
 
     public String getNickName(int id, String jwt) throws Exception {
         HttpRequest req = requestBuilder("/api/users/" + id + "/nickname", jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             String body = r.body();
             // Try to handle JSON responses first, then fall back to raw/plain text
@@ -115,7 +132,7 @@ public class ApiClient {
 
     public List<Media> getAllMedia(String jwt) throws Exception {
         HttpRequest req = requestBuilder("/api/files/all", jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return mapper.readValue(r.body(), new TypeReference<List<Media>>() {
             });
@@ -125,7 +142,7 @@ public class ApiClient {
 
     public List<Media> getMediaByUser(int userId, String jwt) throws Exception {
         HttpRequest req = requestBuilder("/api/files/user/" + userId, jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return mapper.readValue(r.body(), new TypeReference<List<Media>>() {
             });
@@ -135,7 +152,7 @@ public class ApiClient {
 
     public List<Media> getMyMedia(String jwt) throws Exception {
         HttpRequest req = requestBuilder("/api/files/me", jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return mapper.readValue(r.body(), new TypeReference<List<Media>>() {
             });
@@ -146,7 +163,7 @@ public class ApiClient {
     public String listBlobs(String jwt) throws Exception {
         String path = "/api/files?container=" + URLEncoder.encode(defaultBlobContainer, "UTF-8");
         HttpRequest req = requestBuilder(path, jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return r.body();
         }
@@ -159,7 +176,7 @@ public class ApiClient {
         HttpRequest req = requestBuilder(path, jwt).GET().build();
         HttpResponse<InputStream> r = client.send(req, HttpResponse.BodyHandlers.ofInputStream());
         if (r.statusCode() / 100 == 2) {
-            try (InputStream is = r.body(); OutputStream os = new FileOutputStream(destFile)) {
+            try (InputStream is = factory.decode(r); OutputStream os = new FileOutputStream(destFile)) {
                 is.transferTo(os);
             }
             return;
@@ -187,7 +204,7 @@ public class ApiClient {
                 .header("Content-Type", "multipart/form-data; boundary=" + boundary)
                 .POST(body)
                 .build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return r.body();
         }
@@ -231,7 +248,7 @@ public class ApiClient {
         }
 
         HttpRequest req = requestBuilder(path, jwt).GET().build();
-        HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> r = client.send(req, stringHandler);
         if (r.statusCode() / 100 == 2) {
             return mapper.readValue(r.body(), new TypeReference<List<Media>>() {
             });
@@ -0,0 +1,319 @@
+package cat.dam.roig.roigmediapollingcomponent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Builds and holds one {@link HttpClient} that several {@link ApiClient}s can
+ * share, so components pointing at the same server reuse connections, TLS
+ * sessions and the client's thread pool instead of each creating their own.
+ * <p>
+ * Usage:
+ * <pre>
+ * HttpClientFactory f = HttpClientFactory.builder()
+ *         .preferHttp2(true)
+ *         .virtualThreadExecutor()
+ *         .endpointTimeout("/api/files/upload", Duration.ofMinutes(2))
+ *         .gzip(true)
+ *         .build();
+ * component.setHttpClientFactory(f);
+ * </pre>
+ * Instances are immutable; the {@link HttpClient} is created on first use.
+ * Call {@link #close()} when no component uses the factory any more, to
+ * release the client and any executor the factory created. Executors passed
+ * to {@link Builder#executor(Executor)} stay owned by the caller and are not
+ * shut down.
+ */
+public final class HttpClientFactory implements AutoCloseable {
+
+    private static final HttpClientFactory SHARED = builder().build();
+
+    private final boolean preferHttp2;
+    private final Executor executor;
+    // Executor created by the factory itself (virtualThreadExecutor), shut down on close()
+    private final ExecutorService ownedExecutor;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final Map<String, Duration> endpointTimeouts;
+    private final boolean gzip;
+
+    private volatile HttpClient client;
+    private volatile boolean closed;
+
+    private HttpClientFactory(Builder b) {
+        this.preferHttp2 = b.preferHttp2;
+        this.ownedExecutor = b.virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.executor = ownedExecutor != null ? ownedExecutor : b.executor;
+        this.connectTimeout = b.connectTimeout;
+        this.requestTimeout = b.requestTimeout;
+        this.endpointTimeouts = Map.copyOf(b.endpointTimeouts);
+        this.gzip = b.gzip;
+    }
+
+    /**
+     * Default factory used when none is configured: 10 s connect timeout,
+     * 30 s request timeout, HTTP/2 with fallback, no gzip. Lives for the whole
+     * process; {@link #close()} on it is ignored.
+     */
+    public static HttpClientFactory shared() {
+        return SHARED;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the shared client, creating it on the first call.
+     *
+     * @throws IllegalStateException if the factory has been closed
+     */
+    public HttpClient getClient() {
+        if (closed) {
+            throw new IllegalStateException("HttpClientFactory is closed");
+        }
+        HttpClient c = client;
+        if (c == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("HttpClientFactory is closed");
+                }
+                c = client;
+                if (c == null) {
+                    HttpClient.Builder b = HttpClient.newBuilder()
+                            .connectTimeout(connectTimeout)
+                            .version(preferHttp2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+                    if (executor != null) {
+                        b.executor(executor);
+                    }
+                    c = b.build();
+                    client = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Closes the client and shuts down the executor the factory created, if
+     * any. Caller-supplied executors are left running. Calling it more than
+     * once, or on {@link #shared()}, does nothing.
+     */
+    @Override
+    public void close() {
+        if (this == SHARED) {
+            return;
+        }
+        HttpClient c;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            c = client;
+        }
+        if (c != null) {
+            c.close();
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Request timeout for a path: the longest configured endpoint prefix that
+     * matches on a path-segment boundary wins, otherwise the default request
+     * timeout.
+     */
+    public Duration requestTimeoutFor(String path) {
+        int q = path.indexOf('?');
+        String p = q >= 0 ? path.substring(0, q) : path;
+        Duration best = requestTimeout;
+        int bestLen = -1;
+        for (Map.Entry<String, Duration> e : endpointTimeouts.entrySet()) {
+            String key = e.getKey();
+            if (matchesSegment(p, key) && key.length() > bestLen) {
+                best = e.getValue();
+                bestLen = key.length();
+            }
+        }
+        return best;
+    }
+
+    // "/api/files/upload" matches itself and "/api/files/upload/..." but not "/api/files/uploadX"
+    private static boolean matchesSegment(String path, String key) {
+        return path.startsWith(key)
+                && (path.length() == key.length() || key.endsWith("/") || path.charAt(key.length()) == '/');
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * String body handler that transparently gunzips the response when gzip is
+     * enabled and the server answered with {@code Content-Encoding: gzip}.
+     * In both cases the charset comes from {@code Content-Type} (UTF-8 if
+     * absent), as with {@link HttpResponse.BodyHandlers#ofString()}.
+     */
+    HttpResponse.BodyHandler<String> stringHandler() {
+        HttpResponse.BodyHandler<String> plain = HttpResponse.BodyHandlers.ofString();
+        if (!gzip) {
+            return plain;
+        }
+        return info -> {
+            if (isGzipped(info.headers().firstValue("Content-Encoding").orElse(null))) {
+                Charset charset = charsetFrom(info.headers().firstValue("Content-Type").orElse(null));
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofByteArray(), bytes -> gunzipToString(bytes, charset));
+            }
+            return plain.apply(info);
+        };
+    }
+
+    /**
+     * Wraps a streamed response body in a {@link GZIPInputStream} if it is
+     * gzip-encoded.
+     */
+    InputStream decode(HttpResponse<InputStream> r) throws IOException {
+        if (gzip && isGzipped(r.headers().firstValue("Content-Encoding").orElse(null))) {
+            return new GZIPInputStream(r.body());
+        }
+        return r.body();
+    }
+
+    private static boolean isGzipped(String contentEncoding) {
+        return contentEncoding != null && contentEncoding.trim().equalsIgnoreCase("gzip");
+    }
+
+    private static String gunzipToString(byte[] bytes, Charset charset) {
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(is.readAllBytes(), charset);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Charset parameter of a Content-Type header, UTF-8 if missing or unknown
+    private static Charset charsetFrom(String contentType) {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                String p = param.trim();
+                if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                    String name = p.substring(8).trim().replace("\"", "");
+                    try {
+                        return Charset.forName(name);
+                    } catch (IllegalArgumentException ex) {
+                        return StandardCharsets.UTF_8;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    public static final class Builder {
+
+        private boolean preferHttp2 = true;
+        private Executor executor;
+        private boolean virtualThreads;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(30);
+        private final Map<String, Duration> endpointTimeouts = new LinkedHashMap<>();
+        private boolean gzip;
+
+        private Builder() {
+        }
+
+        /**
+         * Prefer HTTP/2 (falls back to HTTP/1.1 if the server doesn't support
+         * it). If false, HTTP/1.1 is always used.
+         */
+        public Builder preferHttp2(boolean preferHttp2) {
+            this.preferHttp2 = preferHttp2;
+            return this;
+        }
+
+        /**
+         * Executor for the client's asynchronous and dependent tasks. If not
+         * set, the JDK default cached thread pool is used. The executor stays
+         * owned by the caller: {@link HttpClientFactory#close()} does not shut
+         * it down.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            this.virtualThreads = false;
+            return this;
+        }
+
+        /**
+         * Uses a virtual-thread-per-task executor for the client. The factory
+         * creates it on {@link #build()} and shuts it down on
+         * {@link HttpClientFactory#close()}.
+         */
+        public Builder virtualThreadExecutor() {
+            this.executor = null;
+            this.virtualThreads = true;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = requirePositive(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        /**
+         * Default timeout for requests without a specific endpoint timeout.
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requirePositive(requestTimeout, "requestTimeout");
+            return this;
+        }
+
+        /**
+         * Timeout for requests whose path is {@code pathPrefix} or lies below
+         * it (e.g. "/api/files/upload" matches "/api/files/upload" and
+         * "/api/files/upload/..." but not "/api/files/uploadX"), ignoring the
+         * query string.
+         */
+        public Builder endpointTimeout(String pathPrefix, Duration timeout) {
+            if (pathPrefix == null || pathPrefix.isBlank()) {
+                throw new IllegalArgumentException("pathPrefix is required");
+            }
+            endpointTimeouts.put(pathPrefix, requirePositive(timeout, "timeout"));
+            return this;
+        }
+
+        /**
+         * Sends {@code Accept-Encoding: gzip} and decodes gzip responses.
+         */
+        public Builder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        public HttpClientFactory build() {
+            return new HttpClientFactory(this);
+        }
+
+        private static Duration requirePositive(Duration d, String name) {
+            if (d == null || d.isNegative() || d.isZero()) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return d;
+        }
+    }
+}
@@ -5,8 +5,14 @@ package cat.dam.roig.roigmediapollingcomponent;
  * @author metku
  */
 // Created by Github Copilot
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * Maps to the API Media JSON. Unknown JSON properties will be ignored, so new
+ * server fields don't break polling.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class Media {
     @JsonProperty("id")
     public int id;
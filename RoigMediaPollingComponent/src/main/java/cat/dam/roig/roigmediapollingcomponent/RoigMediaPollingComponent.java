@@ -1,15 +1,20 @@
 package cat.dam.roig.roigmediapollingcomponent;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JPanel;
 import javax.swing.Timer;
 
@@ -43,28 +48,40 @@ import javax.swing.Timer;
  * <ul>
  * <li>El Timer solo funciona si <code>running = true</code>.</li>
  * <li><code>lastChecked</code> usa formato ISO_OFFSET_DATE_TIME.</li>
- * <li><code>ApiClient</code> se inicializa automáticamente (lazy).</li>
+ * <li><code>ApiClient</code> se inicializa automáticamente (lazy) y, salvo
+ * que se indique un <code>HttpClientFactory</code>, comparte el
+ * <code>HttpClient</code> con el resto de componentes.</li>
  * <li><code>knownMediaIds</code> evita eventos repetidos.</li>
  * <li>El icono se carga desde <code>/images/poller.png</code>.</li>
+ * <li>El estado interno es seguro para uso concurrente sin bloqueos: los
+ * wrappers y los setters (incluidos <code>setRunning</code> y
+ * <code>setPollingInterval</code>) pueden llamarse desde cualquier hilo
+ * mientras el polling está activo.</li>
  * </ul>
  */
 public class RoigMediaPollingComponent extends JPanel implements Serializable {
 
-    private String apiUrl;
-    private boolean running;
-    private int pollingInterval;
-    private String token;
-    private String lastChecked;
-    private transient Timer pollingTimer;
+    private volatile String apiUrl;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile int pollingInterval;
+    private volatile String token;
+    // Se crea una sola vez (constructor / readObject), nunca de forma lazy
+    private transient volatile Timer pollingTimer;
 
-    // IDs ya notificados
-    private final Set<Integer> knownMediaIds = new HashSet<>();
+    // Cursor del polling (ISO_OFFSET_DATE_TIME), actualizado de forma atómica
+    private final AtomicReference<String> lastChecked = new AtomicReference<>();
 
-    // Cliente hacia la API
-    private ApiClient apiClient;
+    // IDs ya notificados (set concurrente: add() decide quién notifica)
+    private final Set<Integer> knownMediaIds = ConcurrentHashMap.newKeySet();
 
-    // Listeners registrados
-    private final List<MediaListener> mediaListeners = new ArrayList<>();
+    // Factoría del HttpClient; null = HttpClientFactory.shared()
+    private transient volatile HttpClientFactory httpClientFactory;
+
+    // Cliente hacia la API (creación lazy sin bloqueos)
+    private final AtomicReference<ApiClient> apiClient = new AtomicReference<>();
+
+    // Listeners registrados (copy-on-write: iterar sin copiar ni bloquear)
+    private final CopyOnWriteArrayList<MediaListener> mediaListeners = new CopyOnWriteArrayList<>();
 
     // ===================== CONSTRUCTOR =====================
     public RoigMediaPollingComponent() {
@@ -74,9 +91,16 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
         if (pollingInterval <= 0) {
             pollingInterval = 10;
         }
-        if (lastChecked == null) {
+        if (lastChecked.get() == null) {
             updateLastChecked();
         }
+        pollingTimer = createTimer();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        pollingTimer = createTimer();
+        syncTimer();
     }
 
     // ===================== GETTERS / SETTERS =====================
@@ -89,42 +113,44 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
     }
 
     public boolean isRunning() {
-        return running;
+        return running.get();
     }
 
+    /**
+     * Activa o para el polling. Solo el hilo que cambia realmente el valor
+     * (getAndSet) arranca o para el Timer.
+     */
     public void setRunning(boolean running) {
-        boolean prev = this.running;
-        this.running = running;
-
-        if (prev == running) {
+        if (this.running.getAndSet(running) == running) {
             return;
         }
 
         if (running) {
-            if (lastChecked == null || lastChecked.isBlank()) {
+            String cursor = lastChecked.get();
+            if (cursor == null || cursor.isBlank()) {
                 updateLastChecked();
             }
-            initTimer();
-            if (!pollingTimer.isRunning()) {
-                pollingTimer.start();
-            }
-        } else {
-            if (pollingTimer != null && pollingTimer.isRunning()) {
-                pollingTimer.stop();
-            }
         }
+        syncTimer();
     }
 
     public int getPollingInterval() {
         return pollingInterval;
     }
 
+    /**
+     * Cambia el intervalo y el delay del Timer. Se repite si otro hilo ha
+     * cambiado el intervalo entretanto, así el delay acaba siempre igual al
+     * último valor escrito.
+     */
     public void setPollingInterval(int pollingInterval) {
         this.pollingInterval = pollingInterval;
-        if (pollingTimer != null) {
-            int seconds = pollingInterval > 0 ? pollingInterval : 10;
-            pollingTimer.setDelay(seconds * 1000);
-        }
+        Timer t = pollingTimer;
+        int want;
+        do {
+            want = this.pollingInterval;
+            t.setDelay(delayMillis(want));
+        } while (want != this.pollingInterval);
     }
 
     public String getToken() {
@@ -136,11 +162,31 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
     }
 
     public String getLastChecked() {
-        return lastChecked;
+        return lastChecked.get();
     }
 
     public void setLastChecked(String lastChecked) {
-        this.lastChecked = lastChecked;
+        this.lastChecked.set(lastChecked);
+    }
+
+    /**
+     * Factoría activa: la configurada o, si no hay ninguna,
+     * {@link HttpClientFactory#shared()}.
+     */
+    public HttpClientFactory getHttpClientFactory() {
+        HttpClientFactory f = httpClientFactory;
+        return f != null ? f : HttpClientFactory.shared();
+    }
+
+    /**
+     * Permite compartir un HttpClient configurado (HTTP/2, executor, timeouts,
+     * gzip) entre varios componentes. El ApiClient se recrea en el siguiente
+     * uso con la nueva factoría; null vuelve a la compartida por defecto.
+     * La factoría anterior no se cierra: quien la creó debe llamar a
+     * {@link HttpClientFactory#close()} cuando ningún componente la use.
+     */
+    public void setHttpClientFactory(HttpClientFactory httpClientFactory) {
+        this.httpClientFactory = httpClientFactory;
     }
 
     // ===================== ICONO =====================
@@ -167,74 +213,114 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
 
     // ===================== TIMER =====================
     /**
-     * Crea el Timer si no existe.
+     * Arranca o para el Timer según el valor actual de running. Se repite si
+     * otro hilo ha cambiado running entretanto, así el Timer acaba siempre en
+     * el estado del último setRunning.
      */
-    private void initTimer() {
-        if (pollingTimer != null) {
-            return;
-        }
+    private void syncTimer() {
+        Timer t = pollingTimer;
+        boolean want;
+        do {
+            want = running.get();
+            if (want) {
+                t.start();
+            } else {
+                t.stop();
+            }
+        } while (want != running.get());
+    }
 
-        int seconds = (pollingInterval > 0) ? pollingInterval : 10;
-        pollingTimer = new Timer(seconds * 1000, e -> checkServerForNewMedia());
-        pollingTimer.setRepeats(true);
+    private static int delayMillis(int interval) {
+        int seconds = interval > 0 ? interval : 10;
+        return seconds * 1000;
+    }
+
+    /**
+     * Crea el Timer (parado). Se llama solo desde el constructor y readObject,
+     * así nunca hay dos Timers para el mismo componente.
+     */
+    private Timer createTimer() {
+        Timer t = new Timer(delayMillis(pollingInterval), e -> checkServerForNewMedia());
+        t.setRepeats(true);
+        return t;
     }
 
     // ===================== POLLING =====================
     /**
      * Método llamado periódicamente por el Timer. Obtiene media nuevos y lanza
      * el evento si procede.
+     * <p>
+     * El cursor se lee una sola vez y solo se avanza si nadie lo ha movido
+     * entretanto (compareAndSet), de modo que dos polls concurrentes nunca lo
+     * hacen retroceder. Si la petición falla el cursor no se mueve, así el
+     * siguiente tick vuelve a pedir la misma ventana. La deduplicación usa
+     * {@code Set.add()} atómico, por lo que repetir la ventana no duplica
+     * eventos.
      */
     private void checkServerForNewMedia() {
-        if (!running) {
+        if (!running.get()) {
             return;
         }
-        if (token == null || token.isBlank()) {
+        String jwt = token;
+        if (jwt == null || jwt.isBlank()) {
             return;
         }
-        if (apiUrl == null || apiUrl.isBlank()) {
+        String url = apiUrl;
+        if (url == null || url.isBlank()) {
             return;
         }
 
         System.out.println("[POLL] tick ");
 
-        try {
-            ensureApiClient();
+        String since = lastChecked.get();
+        // Se fija antes de la petición para no perder media añadidos durante ella
+        String next = nowIso();
 
-            List<Media> server = apiClient.getMediaAddedSince(lastChecked, token);
+        try {
+            List<Media> server = ensureApiClient().getMediaAddedSince(since, jwt);
 
-            if (server == null || server.isEmpty()) {
-                updateLastChecked();
-                return;
-            }
+            if (server != null && !server.isEmpty()) {
+                List<Media> fresh = new ArrayList<>();
 
-            List<Media> fresh = new ArrayList<>();
+                for (Media m : server) {
+                    int id = m.id; // o m.getId() si tu clase lo tiene
+                    if (knownMediaIds.add(id)) {
+                        fresh.add(m);
+                    }
+                }
 
-            for (Media m : server) {
-                int id = m.id; // o m.getId() si tu clase lo tiene
-                if (!knownMediaIds.contains(id)) {
-                    knownMediaIds.add(id);
-                    fresh.add(m);
+                if (!fresh.isEmpty()) {
+                    fireNewMediaEvent(fresh);
                 }
             }
 
-            if (!fresh.isEmpty()) {
-                fireNewMediaEvent(fresh);
-            }
+            // Solo se avanza si la petición ha ido bien
+            lastChecked.compareAndSet(since, next);
 
         } catch (Exception ex) {
             ex.printStackTrace();
-        } finally {
-            updateLastChecked();
         }
     }
 
     // ===================== API CLIENT =====================
     /**
-     * Inicializa ApiClient si aún no existe.
+     * Devuelve el ApiClient, creándolo si aún no existe o si se construyó con
+     * otra factoría distinta de la activa. Si varios hilos compiten, solo se
+     * publica una instancia (compareAndSet) y se devuelve siempre la
+     * publicada, nunca null. Un cliente con factoría antigua que llegue a
+     * publicarse se reemplaza en la siguiente llamada.
      */
-    private void ensureApiClient() {
-        if (apiClient == null) {
-            apiClient = new ApiClient(apiUrl);
+    private ApiClient ensureApiClient() {
+        while (true) {
+            HttpClientFactory f = getHttpClientFactory();
+            ApiClient current = apiClient.get();
+            if (current != null && current.getFactory() == f) {
+                return current;
+            }
+            ApiClient fresh = new ApiClient(apiUrl, f);
+            if (apiClient.compareAndSet(current, fresh)) {
+                return fresh;
+            }
         }
     }
 
@@ -242,14 +328,18 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
      * Actualiza lastChecked con la hora actual (UTC) en ISO_OFFSET_DATE_TIME.
      */
     private void updateLastChecked() {
-        this.lastChecked = OffsetDateTime.now(ZoneOffset.UTC)
+        lastChecked.set(nowIso());
+    }
+
+    private static String nowIso() {
+        return OffsetDateTime.now(ZoneOffset.UTC)
                 .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
     }
 
     // ===================== EVENTOS =====================
     public void addMediaListener(MediaListener l) {
-        if (l != null && !mediaListeners.contains(l)) {
-            mediaListeners.add(l);
+        if (l != null) {
+            mediaListeners.addIfAbsent(l);
         }
     }
 
@@ -271,7 +361,8 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
         String ts = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
         MediaEvent evt = new MediaEvent(this, newItems, ts);
 
-        for (MediaListener ml : new ArrayList<>(mediaListeners)) {
+        // El iterador de CopyOnWriteArrayList trabaja sobre una instantánea
+        for (MediaListener ml : mediaListeners) {
             try {
                 ml.onNewMediaFound(evt);
             } catch (Exception ex) {
@@ -282,29 +373,24 @@ public class RoigMediaPollingComponent extends JPanel implements Serializable {
 
     // ===================== WRAPPERS PÚBLICOS =====================
     public String login(String email, String password) throws Exception {
-        ensureApiClient();
-        String jwt = apiClient.login(email, password);
+        String jwt = ensureApiClient().login(email, password);
         setToken(jwt);
         return jwt;
     }
 
     public String getNickName(int userId) throws Exception {
-        ensureApiClient();
-        return apiClient.getNickName(userId, token);
+        return ensureApiClient().getNickName(userId, token);
     }
 
     public List<Media> getAllMedia() throws Exception {
-        ensureApiClient();
-        return apiClient.getAllMedia(token);
+        return ensureApiClient().getAllMedia(token);
     }
 
     public void download(int mediaId, File destFile) throws Exception {
-        ensureApiClient();
-        apiClient.download(mediaId, destFile, token);
+        ensureApiClient().download(mediaId, destFile, token);
     }
 
     public String uploadFileMultipart(File f, String fromUrl) throws Exception {
-        ensureApiClient();
-        return apiClient.uploadFileMultipart(f, fromUrl, token);
+        return ensureApiClient().uploadFileMultipart(f, fromUrl, token);
     }
 }
@@ -7,10 +7,12 @@ package cat.dam.roig.roigmediapollingcomponent;
 // Created by Github Copilot
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Base64;
 
 /**
  * Maps to the API Usuari JSON. Unknown JSON properties will be ignored.
- * Note: API byte[] fields (picture) are expected as base64 strings and Jackson will decode into byte[].
+ * Note: the API sends picture as a base64 string. It is kept raw and only decoded by {@link #getPicture()},
+ * so callers that just need id or nickName don't pay for the decode.
  * If you prefer typed date handling, register JavaTimeModule on your ObjectMapper and change date fields to LocalDate/OffsetDateTime.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -27,9 +29,12 @@ public class Usuari {
     @JsonProperty("nickName")
     public String nickName;
 
-    // API sends binary as base64 string — Jackson will decode into byte[]
+    // API sends binary as base64 string — kept raw, see getPicture()
     @JsonProperty("picture")
-    public byte[] picture;
+    private String pictureBase64;
+
+    // Decoded picture, filled on first getPicture() call
+    private transient volatile byte[] pictureCache;
 
     @JsonProperty("pictureFileName")
     public String pictureFileName;
@@ -42,6 +47,27 @@ public class Usuari {
     @JsonProperty("registeredAt")
     public String registeredAt;
 
+    /**
+     * Decodes the picture on first access and caches the result. Replaces the old
+     * public {@code byte[] picture} field: use {@code getPicture()} instead of {@code picture}.
+     * Uses the MIME decoder, so line breaks and whitespace are skipped as Jackson did.
+     * Safe to call from several threads; each call returns its own copy.
+     *
+     * @return a copy of the picture bytes, or null if the user has no picture
+     * @throws IllegalArgumentException if the API sent a picture that is not valid base64
+     */
+    public byte[] getPicture() {
+        byte[] decoded = pictureCache;
+        if (decoded == null) {
+            if (pictureBase64 == null || pictureBase64.isEmpty()) {
+                return null;
+            }
+            decoded = Base64.getMimeDecoder().decode(pictureBase64);
+            pictureCache = decoded;
+        }
+        return decoded.clone();
+    }
+
     @Override
     public String toString() {
         return String.format("Usuari{id=%d, email=%s, nickName=%s}", id, email, nickName);